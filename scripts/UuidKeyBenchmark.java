@@ -0,0 +1,206 @@
+// This file is part of OCMS.
+//
+// OCMS is free software: you can redistribute it and/or modify it under the terms of the GNU
+// General Public License as published by the Free Software Foundation, either version 3 of the
+// License, or (at your option) any later version.
+//
+// OCMS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+// the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along with OCMS.  If not, see
+// <https://www.gnu.org/licenses/>.
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Clock;
+import java.time.OffsetDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Random;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+import ca.njuneau.ocms.model.UuidV7Generator;
+
+/**
+ * Compares random (v4) and time-ordered (v7) fridge row identifiers: the cost of generating them,
+ * then insert throughput, primary key size and WAL volume on a table partitioned like the fridge.
+ *
+ * Meant to be launched by benchmark-uuid-keys.sh, with the service's assembly on the class path.
+ */
+public class UuidKeyBenchmark {
+
+  private static final int GENERATOR_IDS = 5_000_000;
+  private static final int PARTITION_MONTHS = 12;
+  private static final long RANDOM_SEED = 42;
+
+  private static final DateTimeFormatter PARTITION_SUFFIX_FORMATTER = DateTimeFormatter.ofPattern("uuuuMM");
+  private static final DateTimeFormatter BOUND_FORMATTER = DateTimeFormatter.ofPattern("uuuu-MM-dd HH:mm:ssxxx");
+
+  /**
+   * @param args JDBC URL, user, password, number of rows per table and rows per transaction
+   * @throws SQLException If the database cannot be used
+   */
+  public static void main(final String[] args) throws SQLException {
+    final String jdbcUrl = args[0];
+    final String user = args[1];
+    final String password = args[2];
+    final int rows = Integer.parseInt(args[3]);
+    final int batchSize = Integer.parseInt(args[4]);
+
+    final Supplier<UUID> uuidV4 = UUID::randomUUID;
+    final Supplier<UUID> uuidV7 = new UuidV7Generator(Clock.systemUTC());
+
+    // The first round warms up the JIT
+    for (int round = 0; round < 2; round++) {
+      benchmarkGenerator("uuidv4", uuidV4, round > 0);
+      benchmarkGenerator("uuidv7", uuidV7, round > 0);
+    }
+
+    System.out.println("Inserting " + rows + " rows per table, " + batchSize + " rows per transaction");
+    try (Connection connection = DriverManager.getConnection(jdbcUrl, user, password)) {
+      benchmarkInserts(connection, "uuidv4", uuidV4, rows, batchSize);
+      benchmarkInserts(connection, "uuidv7", uuidV7, rows, batchSize);
+    }
+  }
+
+  /**
+   * Measures the time taken to generate identifiers on a single thread
+   *
+   * @param kind The kind of identifier
+   * @param generator The identifier generator
+   * @param report Whether to print the result
+   */
+  private static void benchmarkGenerator(final String kind, final Supplier<UUID> generator, final boolean report) {
+    long checksum = 0;
+    final long start = System.nanoTime();
+    for (int i = 0; i < GENERATOR_IDS; i++) {
+      checksum ^= generator.get().getLeastSignificantBits();
+    }
+    final long elapsed = System.nanoTime() - start;
+    if (report) {
+      System.out.printf("%-6s generator %8.1f ns/id (checksum %x)%n", kind, (double) elapsed / GENERATOR_IDS, checksum);
+    }
+  }
+
+  /**
+   * Inserts rows in a freshly created table, measures it and drops it
+   *
+   * @param connection The database connection
+   * @param kind The kind of identifier, used in the table name
+   * @param generator The identifier generator
+   * @param rows The number of rows to insert
+   * @param batchSize The number of rows inserted per transaction
+   * @throws SQLException If the database cannot be used
+   */
+  private static void benchmarkInserts(
+      final Connection connection,
+      final String kind,
+      final Supplier<UUID> generator,
+      final int rows,
+      final int batchSize) throws SQLException {
+    final String table = "fridge_bench_" + kind;
+    connection.setAutoCommit(true);
+    try (Statement statement = connection.createStatement()) {
+      statement.execute("DROP TABLE IF EXISTS " + table);
+      // Same layout as V2__partition_fridge_by_date_expiry.sql
+      statement.execute("CREATE TABLE " + table + """
+          (
+            id            uuid                      NOT NULL,
+            name          VARCHAR(255)              NOT NULL,
+            date_entered  TIMESTAMP WITH TIME ZONE  NOT NULL DEFAULT (now() AT TIME ZONE 'utc'),
+            date_expiry   TIMESTAMP WITH TIME ZONE  NOT NULL,
+            PRIMARY KEY (id, date_expiry)
+          ) PARTITION BY RANGE (date_expiry)""");
+      statement.execute("CREATE TABLE " + table + "_default PARTITION OF " + table + " DEFAULT");
+      final YearMonth firstMonth = YearMonth.now(ZoneOffset.UTC);
+      for (int month = 0; month < PARTITION_MONTHS; month++) {
+        final YearMonth partitionMonth = firstMonth.plusMonths(month);
+        statement.execute("CREATE TABLE " + table + "_p" + PARTITION_SUFFIX_FORMATTER.format(partitionMonth)
+            + " PARTITION OF " + table
+            + " FOR VALUES FROM ('" + BOUND_FORMATTER.format(monthStart(partitionMonth)) + "')"
+            + " TO ('" + BOUND_FORMATTER.format(monthStart(partitionMonth.plusMonths(1))) + "')");
+      }
+      statement.execute("CHECKPOINT");
+    }
+
+    // Expiry dates are spread evenly across the partitions, identically for every kind of identifier
+    final Random random = new Random(RANDOM_SEED);
+    final OffsetDateTime firstExpiry = monthStart(YearMonth.now(ZoneOffset.UTC));
+    final long expirySpanSeconds = monthStart(YearMonth.now(ZoneOffset.UTC).plusMonths(PARTITION_MONTHS)).toEpochSecond()
+        - firstExpiry.toEpochSecond();
+
+    final String startLsn = queryString(connection, "SELECT pg_current_wal_lsn()::text");
+    final long start = System.nanoTime();
+    connection.setAutoCommit(false);
+    try (PreparedStatement insert = connection.prepareStatement(
+        "INSERT INTO " + table + " (id, name, date_expiry) VALUES (?, ?, ?)")) {
+      for (int row = 1; row <= rows; row++) {
+        insert.setObject(1, generator.get());
+        insert.setString(2, "bench");
+        insert.setObject(3, firstExpiry.plusSeconds(random.nextLong(expirySpanSeconds)));
+        insert.addBatch();
+        if (row % batchSize == 0 || row == rows) {
+          insert.executeBatch();
+          connection.commit();
+        }
+      }
+    }
+    final long elapsed = System.nanoTime() - start;
+    connection.setAutoCommit(true);
+
+    try (PreparedStatement sizes = connection.prepareStatement("""
+        SELECT
+          pg_size_pretty(sum(pg_relation_size(i.indexrelid))),
+          pg_size_pretty(sum(pg_relation_size(i.indrelid))),
+          pg_size_pretty(pg_wal_lsn_diff(pg_current_wal_lsn(), ?::pg_lsn))
+        FROM pg_inherits h
+        JOIN pg_index i ON i.indrelid = h.inhrelid
+        WHERE h.inhparent = ?::regclass AND i.indisprimary""")) {
+      sizes.setString(1, startLsn);
+      sizes.setString(2, table);
+      try (ResultSet result = sizes.executeQuery()) {
+        result.next();
+        System.out.printf(
+            "%-6s %10.0f rows/s   pkey %10s   table %10s   WAL %10s%n",
+            kind,
+            rows / (elapsed / 1e9),
+            result.getString(1),
+            result.getString(2),
+            result.getString(3));
+      }
+    }
+
+    try (Statement statement = connection.createStatement()) {
+      statement.execute("DROP TABLE " + table);
+    }
+  }
+
+  /**
+   * @param connection The database connection
+   * @param sql A query returning a single text value
+   * @return The value
+   * @throws SQLException If the query fails
+   */
+  private static String queryString(final Connection connection, final String sql) throws SQLException {
+    try (Statement statement = connection.createStatement(); ResultSet result = statement.executeQuery(sql)) {
+      result.next();
+      return result.getString(1);
+    }
+  }
+
+  /**
+   * @param month A month
+   * @return The first instant of the month, in UTC
+   */
+  private static OffsetDateTime monthStart(final YearMonth month) {
+    return month.atDay(1).atStartOfDay().atOffset(ZoneOffset.UTC);
+  }
+
+}
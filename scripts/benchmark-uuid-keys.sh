@@ -0,0 +1,30 @@
+#!/bin/sh
+# Compares random (v4) and time-ordered (v7) UUID primary keys using the service's own generator:
+# generation cost, then insert throughput, primary key index size and WAL volume on a table
+# partitioned like the fridge. The benchmark tables are dropped once measured.
+#
+# Build the service first (mvn clean package).
+
+PGHOST='127.0.0.1'
+PGPORT='5432'
+PGDATABASE='test'
+PGUSER='test'
+PGPASSWORD='test'
+
+BENCH_ROWS="${BENCH_ROWS:-5000000}"
+BENCH_BATCH_SIZE="${BENCH_BATCH_SIZE:-1000}"
+
+SCRIPT_DIR="$(cd "$(dirname "$0")" && pwd)"
+ASSEMBLY_DIR="$(ls -d "${SCRIPT_DIR}"/../service/target/service-*-assembly 2> /dev/null | head -n 1)"
+
+if test -z "${ASSEMBLY_DIR}"; then
+  echo 'Service assembly not found, run "mvn clean package" first'
+  exit 1
+fi
+
+java -cp "${ASSEMBLY_DIR}/*:${ASSEMBLY_DIR}/lib/*" "${SCRIPT_DIR}/UuidKeyBenchmark.java" \
+  "jdbc:postgresql://${PGHOST}:${PGPORT}/${PGDATABASE}" \
+  "${PGUSER}" \
+  "${PGPASSWORD}" \
+  "${BENCH_ROWS}" \
+  "${BENCH_BATCH_SIZE}"
@@ -22,18 +22,4 @@ ALTER DEFAULT PRIVILEGES IN SCHEMA public GRANT ALL ON ROUTINES to test;
 EOF
 fi
 
-TEST_TABLE="$(psql -Atc "SELECT tablename FROM pg_tables WHERE tablename = 'fridge';")"
-if test -z "${TEST_TABLE}"; then
-  psql -f - <<EOF
-CREATE TABLE fridge(
-  id            uuid                      PRIMARY KEY,
-  name          VARCHAR(255)              NOT NULL,
-  date_entered  TIMESTAMP WITH TIME ZONE  NOT NULL DEFAULT (now() AT TIME ZONE 'utc'),
-  date_expiry   TIMESTAMP WITH TIME ZONE  NOT NULL
-);
-
-CREATE INDEX fridge_name_idx ON fridge (name);
-CREATE INDEX fridge_date_entered_idx ON fridge (date_entered);
-CREATE INDEX fridge_date_expiry_idx ON fridge (date_expiry);
-EOF
-fi
+# The schema itself is created and migrated by the service at startup
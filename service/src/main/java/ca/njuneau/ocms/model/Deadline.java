@@ -0,0 +1,83 @@
+// This file is part of OCMS.
+//
+// OCMS is free software: you can redistribute it and/or modify it under the terms of the GNU
+// General Public License as published by the Free Software Foundation, either version 3 of the
+// License, or (at your option) any later version.
+//
+// OCMS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+// the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along with OCMS.  If not, see
+// <https://www.gnu.org/licenses/>.
+
+package ca.njuneau.ocms.model;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * The point in time by which the work on behalf of a request must be done.
+ *
+ * The deadline of the request being served is bound to the serving thread, so that database access
+ * deep down the call stack can limit its own waits to the time left.
+ */
+public final class Deadline {
+
+  private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+
+  private final long expiryNanos;
+
+  /**
+   * @param expiryNanos The {@link System#nanoTime()} value at which the deadline expires
+   */
+  private Deadline(final long expiryNanos) {
+    this.expiryNanos = expiryNanos;
+  }
+
+  /**
+   * @param budget The time allowed from now on
+   * @return A deadline expiring once the budget is spent
+   */
+  public static Deadline after(final Duration budget) {
+    return new Deadline(System.nanoTime() + budget.toNanos());
+  }
+
+  /**
+   * @return The deadline bound to the current thread, if any
+   */
+  public static Optional<Deadline> current() {
+    return Optional.ofNullable(CURRENT.get());
+  }
+
+  /**
+   * Binds a deadline to the current thread. Callers must {@link #unbind()} it once done.
+   *
+   * @param deadline The deadline of the work performed by the current thread
+   */
+  public static void bind(final Deadline deadline) {
+    CURRENT.set(deadline);
+  }
+
+  /**
+   * Removes the deadline bound to the current thread
+   */
+  public static void unbind() {
+    CURRENT.remove();
+  }
+
+  /**
+   * @return The time left before the deadline expires, negative or zero once it has expired
+   */
+  public Duration remaining() {
+    return Duration.ofNanos(expiryNanos - System.nanoTime());
+  }
+
+  /**
+   * @return Whether the deadline has expired
+   */
+  public boolean isExpired() {
+    return expiryNanos - System.nanoTime() <= 0;
+  }
+
+}
@@ -0,0 +1,54 @@
+// This file is part of OCMS.
+//
+// OCMS is free software: you can redistribute it and/or modify it under the terms of the GNU
+// General Public License as published by the Free Software Foundation, either version 3 of the
+// License, or (at your option) any later version.
+//
+// OCMS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+// the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along with OCMS.  If not, see
+// <https://www.gnu.org/licenses/>.
+
+package ca.njuneau.ocms.model;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import com.zaxxer.hikari.pool.HikariPool;
+
+import org.jdbi.v3.core.ConnectionFactory;
+
+/**
+ * Borrows connections from the Hikari pool, waiting no longer than the current thread's
+ * {@link Deadline} allows
+ */
+public class DeadlineConnectionFactory implements ConnectionFactory {
+
+  private final HikariPool pool;
+  private final long maxWaitMillis;
+
+  /**
+   * @param pool The connection pool
+   * @param maxWaitMillis The longest a connection is waited for, deadline or not
+   */
+  public DeadlineConnectionFactory(final HikariPool pool, final long maxWaitMillis) {
+    this.pool = pool;
+    this.maxWaitMillis = maxWaitMillis;
+  }
+
+  @Override
+  public Connection openConnection() throws SQLException {
+    long waitMillis = maxWaitMillis;
+    final var deadline = Deadline.current();
+    if (deadline.isPresent()) {
+      if (deadline.get().isExpired()) {
+        throw new DeadlineExceededException("Deadline expired before obtaining a database connection");
+      }
+      waitMillis = Math.min(waitMillis, deadline.get().remaining().toMillis());
+    }
+    return pool.getConnection(waitMillis);
+  }
+
+}
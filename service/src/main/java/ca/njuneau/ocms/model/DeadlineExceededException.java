@@ -0,0 +1,37 @@
+// This file is part of OCMS.
+//
+// OCMS is free software: you can redistribute it and/or modify it under the terms of the GNU
+// General Public License as published by the Free Software Foundation, either version 3 of the
+// License, or (at your option) any later version.
+//
+// OCMS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+// the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along with OCMS.  If not, see
+// <https://www.gnu.org/licenses/>.
+
+package ca.njuneau.ocms.model;
+
+/**
+ * Thrown when the deadline of a request expires before its work could be done
+ */
+public class DeadlineExceededException extends RuntimeException {
+  private static final long serialVersionUID = -4180216637325467093L;
+
+  /**
+   * @param message The error message
+   */
+  public DeadlineExceededException(final String message) {
+    super(message);
+  }
+
+  /**
+   * @param message The error message
+   * @param cause The cause of the error
+   */
+  public DeadlineExceededException(final String message, final Throwable cause) {
+    super(message, cause);
+  }
+
+}
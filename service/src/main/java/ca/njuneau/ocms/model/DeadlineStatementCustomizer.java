@@ -0,0 +1,41 @@
+// This file is part of OCMS.
+//
+// OCMS is free software: you can redistribute it and/or modify it under the terms of the GNU
+// General Public License as published by the Free Software Foundation, either version 3 of the
+// License, or (at your option) any later version.
+//
+// OCMS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+// the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along with OCMS.  If not, see
+// <https://www.gnu.org/licenses/>.
+
+package ca.njuneau.ocms.model;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import org.jdbi.v3.core.statement.StatementContext;
+import org.jdbi.v3.core.statement.StatementCustomizer;
+import org.postgresql.jdbc.PgStatement;
+
+/**
+ * Sets the query timeout of every statement to the time left before the current thread's
+ * {@link Deadline}. The driver cancels the statement on the server once the timeout elapses.
+ */
+public class DeadlineStatementCustomizer implements StatementCustomizer {
+
+  @Override
+  public void beforeExecution(final PreparedStatement stmt, final StatementContext ctx) throws SQLException {
+    final var deadline = Deadline.current();
+    if (deadline.isPresent()) {
+      if (deadline.get().isExpired()) {
+        throw new DeadlineExceededException("Deadline expired before executing the statement");
+      }
+      // Standard JDBC query timeouts are in whole seconds, far too coarse for request deadlines
+      stmt.unwrap(PgStatement.class).setQueryTimeoutMs(Math.max(1, deadline.get().remaining().toMillis()));
+    }
+  }
+
+}
@@ -0,0 +1,208 @@
+// This file is part of OCMS.
+//
+// OCMS is free software: you can redistribute it and/or modify it under the terms of the GNU
+// General Public License as published by the Free Software Foundation, either version 3 of the
+// License, or (at your option) any later version.
+//
+// OCMS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+// the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along with OCMS.  If not, see
+// <https://www.gnu.org/licenses/>.
+
+package ca.njuneau.ocms.model;
+
+import java.sql.SQLException;
+import java.time.Clock;
+import java.time.OffsetDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.jdbi.v3.core.Handle;
+import org.jdbi.v3.core.Jdbi;
+import org.jdbi.v3.core.JdbiException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Manages the monthly partitions of the fridge table.
+ *
+ * Partitions are created a few months ahead of time so that inserts never land in the default
+ * partition in normal operation. Partitions holding items that expired longer ago than the retention
+ * period are dropped whole instead of deleting their rows one by one.
+ *
+ * Creating and dropping partitions takes locks that block the requests made to the fridge while
+ * waiting for them. Lock waits are therefore bounded: work that cannot get its locks in time is left
+ * to the next maintenance run.
+ */
+public class FridgePartitionMaintainer {
+
+  private static final Logger LOG = LoggerFactory.getLogger(FridgePartitionMaintainer.class);
+
+  /**
+   * Arbitrary advisory lock key, shared by every instance of the service
+   */
+  private static final long MAINTENANCE_LOCK_KEY = 0x6f636d73_66726467L;
+
+  private static final String LOCK_TIMEOUT = "2s";
+
+  /**
+   * Postgres' SQL state for lock waits cancelled by the lock timeout
+   */
+  private static final String LOCK_NOT_AVAILABLE_SQL_STATE = "55P03";
+
+  private static final String PARTITION_PREFIX = "fridge_p";
+  private static final Pattern PARTITION_NAME_PATTERN = Pattern.compile(PARTITION_PREFIX + "(\\d{6})");
+  private static final DateTimeFormatter PARTITION_SUFFIX_FORMATTER = DateTimeFormatter.ofPattern("uuuuMM");
+  private static final DateTimeFormatter BOUND_FORMATTER = DateTimeFormatter.ofPattern("uuuu-MM-dd HH:mm:ssxxx");
+
+  private final Jdbi jdbi;
+  private final Clock clock;
+  private final int monthsAhead;
+  private final int retentionMonths;
+
+  /**
+   * @param jdbi The JDBI instance connected to the database
+   * @param clock The clock giving the current month
+   * @param monthsAhead The number of months after the current one for which partitions must exist
+   * @param retentionMonths The number of months before the current one for which partitions are kept
+   */
+  public FridgePartitionMaintainer(final Jdbi jdbi, final Clock clock, final int monthsAhead, final int retentionMonths) {
+    this.jdbi = jdbi;
+    this.clock = clock;
+    this.monthsAhead = monthsAhead;
+    this.retentionMonths = retentionMonths;
+  }
+
+  /**
+   * Creates the missing future partitions and drops the expired ones
+   */
+  public void maintain() {
+    final YearMonth currentMonth = YearMonth.now(clock);
+    final YearMonth lastMonth = currentMonth.plusMonths(monthsAhead);
+    final YearMonth oldestKeptMonth = currentMonth.minusMonths(retentionMonths);
+
+    final List<String> partitionNames;
+    try {
+      partitionNames = jdbi.inTransaction(handle -> {
+        lockMaintenance(handle);
+        final List<String> existingPartitionNames = handle
+            .createQuery("""
+                SELECT c.relname
+                FROM pg_inherits i
+                JOIN pg_class c ON c.oid = i.inhrelid
+                WHERE i.inhparent = 'fridge'::regclass""")
+            .mapTo(String.class)
+            .list();
+
+        for (YearMonth month = currentMonth; !month.isAfter(lastMonth); month = month.plusMonths(1)) {
+          if (!existingPartitionNames.contains(partitionName(month))) {
+            createPartition(handle, month);
+          }
+        }
+
+        // Stray rows outside of the managed partitions are expired row by row
+        handle.execute("DELETE FROM fridge_default WHERE date_expiry < ?", monthStart(oldestKeptMonth));
+        return existingPartitionNames;
+      });
+    } catch (final JdbiException e) {
+      if (!isLockTimeout(e)) {
+        throw e;
+      }
+      LOG.warn("Timed out waiting for locks while creating fridge partitions, will retry at the next run", e);
+      return;
+    }
+
+    // Dropping a partition locks the whole fridge table: each drop gets its own short transaction
+    for (final String partitionName : partitionNames) {
+      final Matcher matcher = PARTITION_NAME_PATTERN.matcher(partitionName);
+      if (matcher.matches()
+          && YearMonth.parse(matcher.group(1), PARTITION_SUFFIX_FORMATTER).isBefore(oldestKeptMonth)) {
+        LOG.info("Dropping expired fridge partition {}", partitionName);
+        try {
+          jdbi.useTransaction(handle -> {
+            lockMaintenance(handle);
+            handle.execute("DROP TABLE IF EXISTS " + partitionName);
+          });
+        } catch (final JdbiException e) {
+          if (!isLockTimeout(e)) {
+            throw e;
+          }
+          LOG.warn("Timed out waiting for locks while dropping fridge partition {}, will retry at the next run",
+              partitionName, e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Creates and attaches the partition of the given month, moving in the rows that were waiting for
+   * it in the default partition. Attaching fails if the default partition still holds such rows, so
+   * inserts into it are blocked until the end of the transaction.
+   *
+   * @param handle The handle holding the maintenance transaction
+   * @param month The partition's month
+   */
+  private static void createPartition(final Handle handle, final YearMonth month) {
+    final String partitionName = partitionName(month);
+    final OffsetDateTime lowerBound = monthStart(month);
+    final OffsetDateTime upperBound = monthStart(month.plusMonths(1));
+    LOG.info("Creating fridge partition {}", partitionName);
+
+    handle.execute("LOCK TABLE fridge_default IN EXCLUSIVE MODE");
+    handle.execute("CREATE TABLE " + partitionName + " (LIKE fridge INCLUDING DEFAULTS INCLUDING CONSTRAINTS)");
+    handle.execute(
+        "INSERT INTO " + partitionName + " SELECT * FROM fridge_default WHERE date_expiry >= ? AND date_expiry < ?",
+        lowerBound,
+        upperBound);
+    handle.execute("DELETE FROM fridge_default WHERE date_expiry >= ? AND date_expiry < ?", lowerBound, upperBound);
+    handle.execute("ALTER TABLE fridge ATTACH PARTITION " + partitionName
+        + " FOR VALUES FROM ('" + BOUND_FORMATTER.format(lowerBound) + "')"
+        + " TO ('" + BOUND_FORMATTER.format(upperBound) + "')");
+  }
+
+  /**
+   * Serializes maintenance across instances and bounds the lock waits of the transaction
+   *
+   * @param handle The handle holding the maintenance transaction
+   */
+  private static void lockMaintenance(final Handle handle) {
+    handle.execute("SELECT pg_advisory_xact_lock(?)", MAINTENANCE_LOCK_KEY);
+    handle.execute("SET LOCAL lock_timeout = '" + LOCK_TIMEOUT + "'");
+  }
+
+  /**
+   * @param e An exception raised by a maintenance transaction
+   * @return Whether the exception is due to a lock wait exceeding the lock timeout
+   */
+  private static boolean isLockTimeout(final Throwable e) {
+    for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+      if (cause instanceof SQLException sqlException && LOCK_NOT_AVAILABLE_SQL_STATE.equals(sqlException.getSQLState())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @param month The partition's month
+   * @return The name of the month's partition
+   */
+  private static String partitionName(final YearMonth month) {
+    return PARTITION_PREFIX + PARTITION_SUFFIX_FORMATTER.format(month);
+  }
+
+  /**
+   * @param month A month
+   * @return The first instant of the month, in UTC
+   */
+  private static OffsetDateTime monthStart(final YearMonth month) {
+    return month.atDay(1).atStartOfDay().atOffset(ZoneOffset.UTC);
+  }
+
+}
@@ -0,0 +1,126 @@
+// This file is part of OCMS.
+//
+// OCMS is free software: you can redistribute it and/or modify it under the terms of the GNU
+// General Public License as published by the Free Software Foundation, either version 3 of the
+// License, or (at your option) any later version.
+//
+// OCMS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+// the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along with OCMS.  If not, see
+// <https://www.gnu.org/licenses/>.
+
+package ca.njuneau.ocms.model;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+
+import org.jdbi.v3.core.Handle;
+import org.jdbi.v3.core.Jdbi;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Brings the database schema up to date by applying the versioned migrations it has not seen yet.
+ *
+ * Applied versions are recorded in the {@code schema_migration} table. All pending migrations are
+ * applied in a single transaction, under an advisory lock so that concurrently starting instances
+ * do not step on each other.
+ */
+public class SchemaMigrator {
+
+  private static final Logger LOG = LoggerFactory.getLogger(SchemaMigrator.class);
+
+  /**
+   * Arbitrary advisory lock key, shared by every instance of the service
+   */
+  private static final long MIGRATION_LOCK_KEY = 0x6f636d73L;
+
+  /**
+   * All the migrations, in application order. Never edit a migration once it has been released:
+   * add a new one instead.
+   */
+  private static final List<Migration> MIGRATIONS = List.of(
+      new Migration(1, "Create fridge table", "/db/migration/V1__create_fridge.sql"),
+      new Migration(2, "Partition fridge by expiry date", "/db/migration/V2__partition_fridge_by_date_expiry.sql"));
+
+  private final Jdbi jdbi;
+
+  /**
+   * @param jdbi The JDBI instance connected to the database to migrate
+   */
+  public SchemaMigrator(final Jdbi jdbi) {
+    this.jdbi = jdbi;
+  }
+
+  /**
+   * Applies the pending migrations
+   */
+  public void migrate() {
+    jdbi.useTransaction(handle -> {
+      handle.execute("SELECT pg_advisory_xact_lock(?)", MIGRATION_LOCK_KEY);
+      handle.execute("""
+          CREATE TABLE IF NOT EXISTS schema_migration(
+            version      INTEGER                   PRIMARY KEY,
+            description  VARCHAR(255)              NOT NULL,
+            date_applied TIMESTAMP WITH TIME ZONE  NOT NULL DEFAULT (now() AT TIME ZONE 'utc')
+          )""");
+
+      final Set<Integer> appliedVersions = handle
+          .createQuery("SELECT version FROM schema_migration")
+          .mapTo(Integer.class)
+          .set();
+
+      for (final Migration migration : MIGRATIONS) {
+        if (!appliedVersions.contains(migration.version())) {
+          apply(handle, migration);
+        }
+      }
+    });
+  }
+
+  /**
+   * Applies a single migration and records it
+   *
+   * @param handle The handle holding the migration transaction
+   * @param migration The migration to apply
+   */
+  private void apply(final Handle handle, final Migration migration) {
+    LOG.info("Applying schema migration {} - {}", migration.version(), migration.description());
+    handle.createScript(readScript(migration.script())).executeAsSeparateStatements();
+    handle.execute(
+        "INSERT INTO schema_migration (version, description) VALUES (?, ?)",
+        migration.version(),
+        migration.description());
+  }
+
+  /**
+   * @param resourceName The classpath resource holding the migration script
+   * @return The script's content
+   */
+  private static String readScript(final String resourceName) {
+    try (InputStream script = SchemaMigrator.class.getResourceAsStream(resourceName)) {
+      if (script == null) {
+        throw new IllegalStateException("Migration script not found: " + resourceName);
+      }
+      return new String(script.readAllBytes(), StandardCharsets.UTF_8);
+    } catch (final IOException e) {
+      throw new IllegalStateException("Could not read migration script " + resourceName, e);
+    }
+  }
+
+  /**
+   * A versioned schema migration
+   *
+   * @param version The version the schema is at once the migration is applied
+   * @param description A short description of the migration
+   * @param script The classpath resource holding the migration's SQL script
+   */
+  private record Migration(int version, String description, String script) {
+  }
+
+}
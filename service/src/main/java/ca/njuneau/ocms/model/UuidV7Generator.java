@@ -0,0 +1,85 @@
+// This file is part of OCMS.
+//
+// OCMS is free software: you can redistribute it and/or modify it under the terms of the GNU
+// General Public License as published by the Free Software Foundation, either version 3 of the
+// License, or (at your option) any later version.
+//
+// OCMS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+// the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along with OCMS.  If not, see
+// <https://www.gnu.org/licenses/>.
+
+package ca.njuneau.ocms.model;
+
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Generates time-ordered version 7 UUIDs (RFC 9562).
+ *
+ * Consecutive identifiers land next to each other in a B-tree index, unlike random version 4 UUIDs.
+ * The 12 bits following the millisecond timestamp are a counter, randomly seeded every millisecond,
+ * which keeps the identifiers strictly increasing within a millisecond. Should the counter overflow
+ * or the clock go backwards, the timestamp is advanced past the last one issued instead.
+ *
+ * The random bits come from a {@link SecureRandom}, as with {@link UUID#randomUUID()}: identifiers
+ * handed out to clients must not be guessable. All of them are drawn in a single call, which keeps
+ * the cost per identifier close to {@link UUID#randomUUID()}.
+ *
+ * The generator is thread-safe. Ordering identifiers is lock-free; drawing random bits is as
+ * concurrent as the platform's secure random source.
+ */
+public class UuidV7Generator implements Supplier<UUID> {
+
+  private static final int COUNTER_BITS = 12;
+  private static final long COUNTER_MASK = (1L << COUNTER_BITS) - 1;
+  // Half of the counter space is left for identifiers issued in the same millisecond
+  private static final int COUNTER_SEED_MASK = (1 << (COUNTER_BITS - 1)) - 1;
+  private static final int RANDOM_BYTES = Short.BYTES + Long.BYTES;
+
+  private static final long VERSION_BITS = 0x7000L;
+  private static final long VARIANT_BITS = 0x8000000000000000L;
+  private static final long RANDOM_MASK = 0x3FFFFFFFFFFFFFFFL;
+
+  private static final SecureRandom RANDOM = new SecureRandom();
+
+  private final Clock clock;
+
+  /**
+   * The last issued millisecond timestamp and counter, as {@code timestamp << 12 | counter}
+   */
+  private final AtomicLong lastTimestampAndCounter = new AtomicLong();
+
+  /**
+   * @param clock The clock providing the identifiers' timestamp
+   */
+  public UuidV7Generator(final Clock clock) {
+    this.clock = clock;
+  }
+
+  @Override
+  public UUID get() {
+    final byte[] randomBytes = new byte[RANDOM_BYTES];
+    RANDOM.nextBytes(randomBytes);
+    final ByteBuffer random = ByteBuffer.wrap(randomBytes);
+    final long seeded = (clock.millis() << COUNTER_BITS) | (random.getShort() & COUNTER_SEED_MASK);
+
+    long previous;
+    long next;
+    do {
+      previous = lastTimestampAndCounter.get();
+      next = (previous >>> COUNTER_BITS) < (seeded >>> COUNTER_BITS) ? seeded : previous + 1;
+    } while (!lastTimestampAndCounter.compareAndSet(previous, next));
+
+    final long mostSignificantBits = ((next >>> COUNTER_BITS) << 16) | VERSION_BITS | (next & COUNTER_MASK);
+    final long leastSignificantBits = (random.getLong() & RANDOM_MASK) | VARIANT_BITS;
+    return new UUID(mostSignificantBits, leastSignificantBits);
+  }
+
+}
@@ -14,13 +14,23 @@
 package ca.njuneau.ocms.service;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
 
 import jakarta.json.JsonArrayBuilder;
 import jakarta.json.JsonBuilderFactory;
@@ -33,10 +43,14 @@ import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.ConstraintViolation;
 import jakarta.validation.Validator;
 
+import ca.njuneau.ocms.model.Deadline;
+import ca.njuneau.ocms.model.DeadlineExceededException;
 import ca.njuneau.ocms.model.FridgeDAO;
 import ca.njuneau.ocms.model.FridgeRow;
 import ca.njuneau.ocms.service.form.FridgeInsertForm;
 
+import io.prometheus.metrics.core.metrics.Counter;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -51,33 +65,89 @@ public class FridgeApplication extends HttpServlet {
   private static final String CONTENT_TYPE = "application/json";
   private static final DateTimeFormatter RESPONSE_DATE_TIME_FORMATTER = DateTimeFormatter.ISO_OFFSET_DATE_TIME;
 
+  /**
+   * Optional request header giving the request's time budget in milliseconds. It can shorten the
+   * endpoint's deadline, never extend it.
+   */
+  private static final String DEADLINE_HEADER = "X-Request-Deadline-Ms";
+
+  /**
+   * Postgres' SQL state for statements cancelled by a timeout
+   */
+  private static final String QUERY_CANCELED_SQL_STATE = "57014";
+
   private final FridgeDAO fridgeDao;
   private final Validator validator;
   private final JsonBuilderFactory jsonBuilderFactory;
+  private final Supplier<UUID> idGenerator;
+  private final SingleFlight<byte[]> fridgeListing;
+  private final Duration listingDeadline;
+  private final Duration insertDeadline;
+  private final Counter deadlineExceededCounter;
 
   /**
    * @param fridgeDao The fridge dao, connected to JDBI
    * @param validator The Jakarta bean validator
    * @param jsonBuilderFactory The Jakarta JSON builder factory
+   * @param idGenerator Generates the identifiers of inserted rows
+   * @param listingExecutor Runs the fridge listing queries shared by concurrent requests
+   * @param listingRequestCounter Counts the requests for the fridge listing
+   * @param listingQueryCounter Counts the database queries actually run for the fridge listing
+   * @param listingDeadline The time allowed to list the fridge's content
+   * @param insertDeadline The time allowed to insert an item in the fridge
+   * @param deadlineExceededCounter Counts the requests that ran out of time, labelled by HTTP method
    */
-  public FridgeApplication(final FridgeDAO fridgeDao, final Validator validator, final JsonBuilderFactory jsonBuilderFactory) {
+  public FridgeApplication(
+      final FridgeDAO fridgeDao,
+      final Validator validator,
+      final JsonBuilderFactory jsonBuilderFactory,
+      final Supplier<UUID> idGenerator,
+      final Executor listingExecutor,
+      final Counter listingRequestCounter,
+      final Counter listingQueryCounter,
+      final Duration listingDeadline,
+      final Duration insertDeadline,
+      final Counter deadlineExceededCounter) {
     this.fridgeDao = fridgeDao;
     this.validator = validator;
     this.jsonBuilderFactory = jsonBuilderFactory;
+    this.idGenerator = idGenerator;
+    this.fridgeListing = new SingleFlight<>(
+        this::loadFridgeListing,
+        listingExecutor,
+        listingRequestCounter,
+        listingQueryCounter);
+    this.listingDeadline = listingDeadline;
+    this.insertDeadline = insertDeadline;
+    this.deadlineExceededCounter = deadlineExceededCounter;
   }
 
   @Override
   protected void service(final HttpServletRequest request, final HttpServletResponse response) throws ServletException, IOException {
     response.setContentType(CONTENT_TYPE);
     if (request.getPathInfo() == null) {
-      super.service(request, response);
+      final Duration endpointDeadline = "POST".equals(request.getMethod()) ? insertDeadline : listingDeadline;
+      Deadline.bind(Deadline.after(requestBudget(request, endpointDeadline)));
+      try {
+        super.service(request, response);
+      } catch (final RuntimeException e) {
+        final int deadlineStatus = deadlineExceededStatus(e);
+        if (deadlineStatus == 0) {
+          throw e;
+        }
+        response.setStatus(deadlineStatus);
+        response.getOutputStream().print(createDeadlineExceededBody(request, deadlineStatus, e));
+      } finally {
+        Deadline.unbind();
+      }
     } else {
       response.getWriter().print(createJsonErrorBuilder(404, "Not found").build().toString());
     }
   }
 
   /**
-   * Obtains the list of items in the fridge
+   * Obtains the list of items in the fridge. Concurrent requests share the same database query and
+   * the same serialized response body.
    *
    * @param request The HTTP request
    * @param response The HTTP response
@@ -85,13 +155,18 @@ public class FridgeApplication extends HttpServlet {
    */
   @Override
   protected void doGet(final HttpServletRequest request, final HttpServletResponse response) throws IOException {
-    final List<FridgeRow> rows = fridgeDao.getFridgeRows();
-    final JsonArrayBuilder arrayBuilder = jsonBuilderFactory.createArrayBuilder();
-    for (final FridgeRow row : rows) {
-      arrayBuilder.add(row.toJson(jsonBuilderFactory.createObjectBuilder(), RESPONSE_DATE_TIME_FORMATTER));
+    final byte[] responseBody;
+    try {
+      responseBody = fridgeListing.get(Deadline.current().orElseThrow().remaining());
+    } catch (final TimeoutException e) {
+      throw new DeadlineExceededException("Deadline expired while waiting for the fridge listing", e);
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for the fridge listing");
     }
-
-    response.getOutputStream().print(arrayBuilder.build().toString());
+    response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+    response.setContentLength(responseBody.length);
+    response.getOutputStream().write(responseBody);
   }
 
   /**
@@ -114,17 +189,26 @@ public class FridgeApplication extends HttpServlet {
         final OffsetDateTime dateExpiryTime = LocalDateTime
             .parse(form.dateExpiry(), DateTimeFormatter.ISO_LOCAL_DATE_TIME)
             .atZone(ZoneOffset.UTC)
-            .toOffsetDateTime();
-        final UUID rowId = UUID.randomUUID();
+            .toOffsetDateTime()
+            // Postgres keeps microseconds: the row is read back by its exact expiry date
+            .truncatedTo(ChronoUnit.MICROS);
+        final UUID rowId = idGenerator.get();
         fridgeDao.insertFridgeRow(rowId, form.name(), dateExpiryTime);
+        fridgeListing.newGeneration();
 
-        final FridgeRow insertedRow = fridgeDao.getFrideRow(rowId);
+        final FridgeRow insertedRow = fridgeDao.getFrideRow(rowId, dateExpiryTime);
         responseStatus = 201;
         responseBody = insertedRow.toJson(jsonBuilderFactory.createObjectBuilder(), RESPONSE_DATE_TIME_FORMATTER).toString();
       } catch (final Exception e) {
-        LOG.error("Error while inserting in the DB", e);
-        responseStatus = 500;
-        responseBody = createJsonErrorBuilder(500, "Could not insert in the DB").build().toString();
+        final int deadlineStatus = deadlineExceededStatus(e);
+        if (deadlineStatus == 0) {
+          LOG.error("Error while inserting in the DB", e);
+          responseStatus = 500;
+          responseBody = createJsonErrorBuilder(500, "Could not insert in the DB").build().toString();
+        } else {
+          responseStatus = deadlineStatus;
+          responseBody = createDeadlineExceededBody(request, deadlineStatus, e);
+        }
       }
 
     } else {
@@ -149,6 +233,81 @@ public class FridgeApplication extends HttpServlet {
     response.getOutputStream().print(responseBody);
   }
 
+  /**
+   * Queries the fridge content and serializes it. The query is shared by every coalesced request:
+   * it runs on the listing executor under the endpoint's deadline, each request limiting only its own
+   * wait.
+   *
+   * @return The UTF-8 encoded JSON array of all the rows in the fridge
+   */
+  private byte[] loadFridgeListing() {
+    final List<FridgeRow> rows;
+    Deadline.bind(Deadline.after(listingDeadline));
+    try {
+      rows = fridgeDao.getFridgeRows();
+    } finally {
+      Deadline.unbind();
+    }
+    final JsonArrayBuilder arrayBuilder = jsonBuilderFactory.createArrayBuilder();
+    for (final FridgeRow row : rows) {
+      arrayBuilder.add(row.toJson(jsonBuilderFactory.createObjectBuilder(), RESPONSE_DATE_TIME_FORMATTER));
+    }
+
+    return arrayBuilder.build().toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * @param request The HTTP request
+   * @param endpointDeadline The time allowed by the endpoint
+   * @return The time allowed to serve the request
+   */
+  private static Duration requestBudget(final HttpServletRequest request, final Duration endpointDeadline) {
+    final String requestedBudget = request.getHeader(DEADLINE_HEADER);
+    if (requestedBudget != null) {
+      try {
+        final long requestedMillis = Long.parseLong(requestedBudget.trim());
+        if (requestedMillis > 0 && requestedMillis < endpointDeadline.toMillis()) {
+          return Duration.ofMillis(requestedMillis);
+        }
+      } catch (final NumberFormatException e) {
+        LOG.debug("Ignoring invalid {} header: {}", DEADLINE_HEADER, requestedBudget);
+      }
+    }
+    return endpointDeadline;
+  }
+
+  /**
+   * @param e An exception raised while serving a request
+   * @return The HTTP status answering a request that ran out of time - 503 if no database connection
+   *     could be obtained in time, 504 otherwise - or 0 if the exception is not due to a deadline
+   */
+  private static int deadlineExceededStatus(final Throwable e) {
+    for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+      if (cause instanceof SQLTransientConnectionException) {
+        return 503;
+      } else if (cause instanceof DeadlineExceededException
+          || cause instanceof SQLTimeoutException
+          || cause instanceof SQLException sqlException && QUERY_CANCELED_SQL_STATE.equals(sqlException.getSQLState())) {
+        return 504;
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Records a request that ran out of time
+   *
+   * @param request The HTTP request
+   * @param status The HTTP status answering the request
+   * @param e The exception raised when the deadline expired
+   * @return The response body
+   */
+  private String createDeadlineExceededBody(final HttpServletRequest request, final int status, final Exception e) {
+    LOG.warn("Deadline exceeded while serving {} {}: {}", request.getMethod(), request.getRequestURI(), e.getMessage());
+    deadlineExceededCounter.labelValues(request.getMethod()).inc();
+    return createJsonErrorBuilder(status, "Deadline exceeded").build().toString();
+  }
+
   /**
    * @param errorCode The error code
    * @param message The error message
@@ -13,21 +13,35 @@
 package ca.njuneau.ocms.service;
 
 import java.time.Clock;
+import java.time.Duration;
 import java.time.ZoneOffset;
 import java.util.Collections;
 import java.util.TimeZone;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 import jakarta.json.Json;
 import jakarta.json.JsonBuilderFactory;
 import jakarta.validation.Validation;
 import jakarta.validation.Validator;
 
+import ca.njuneau.ocms.model.DeadlineConnectionFactory;
+import ca.njuneau.ocms.model.DeadlineStatementCustomizer;
 import ca.njuneau.ocms.model.FridgeDAO;
+import ca.njuneau.ocms.model.FridgePartitionMaintainer;
 import ca.njuneau.ocms.model.FridgeRowMapper;
+import ca.njuneau.ocms.model.SchemaMigrator;
+import ca.njuneau.ocms.model.UuidV7Generator;
 
 import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.pool.HikariPool;
 
+import io.prometheus.metrics.core.metrics.Counter;
 import io.prometheus.metrics.exporter.servlet.jakarta.PrometheusMetricsServlet;
 import io.prometheus.metrics.instrumentation.jvm.JvmMetrics;
 
@@ -44,6 +58,7 @@ import org.eclipse.jetty.server.ServerConnector;
 import org.eclipse.jetty.server.handler.ContextHandlerCollection;
 import org.eclipse.jetty.util.thread.QueuedThreadPool;
 import org.jdbi.v3.core.Jdbi;
+import org.jdbi.v3.core.statement.SqlStatements;
 import org.jdbi.v3.sqlobject.SqlObjectPlugin;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -62,6 +77,17 @@ public class Main {
 
   private static final int DEFAULT_HTTP_PORT = 8080;
 
+  private static final int DEFAULT_PARTITIONS_AHEAD = 3;
+  private static final int DEFAULT_PARTITION_RETENTION = 3;
+  private static final long PARTITION_MAINTENANCE_PERIOD_HOURS = 24;
+
+  private static final String ID_STRATEGY_UUIDV4 = "uuidv4";
+  private static final String ID_STRATEGY_UUIDV7 = "uuidv7";
+  private static final String DEFAULT_ID_STRATEGY = ID_STRATEGY_UUIDV7;
+
+  private static final long DEFAULT_LISTING_DEADLINE_MS = 5000;
+  private static final long DEFAULT_INSERT_DEADLINE_MS = 5000;
+
   /**
    * Program entry point
    *
@@ -102,6 +128,41 @@ public class Main {
             "The HTTP server port (defaults to '" + DEFAULT_HTTP_PORT + "')");
     cliOptions.addOption(cliOptionHttpPort);
 
+    final var cliOptionPartitionsAhead = new Option(
+            "partitionsahead",
+            true,
+            "The number of future monthly fridge partitions to create ahead of time (defaults to '"
+                + DEFAULT_PARTITIONS_AHEAD + "')");
+    cliOptions.addOption(cliOptionPartitionsAhead);
+
+    final var cliOptionPartitionRetention = new Option(
+            "partitionretention",
+            true,
+            "The number of past monthly fridge partitions to keep before dropping them (defaults to '"
+                + DEFAULT_PARTITION_RETENTION + "')");
+    cliOptions.addOption(cliOptionPartitionRetention);
+
+    final var cliOptionIdStrategy = new Option(
+            "idstrategy",
+            true,
+            "The fridge row identifier strategy, either '" + ID_STRATEGY_UUIDV7 + "' (time-ordered) or '"
+                + ID_STRATEGY_UUIDV4 + "' (random) (defaults to '" + DEFAULT_ID_STRATEGY + "')");
+    cliOptions.addOption(cliOptionIdStrategy);
+
+    final var cliOptionListingDeadline = new Option(
+            "listingdeadline",
+            true,
+            "The time allowed to list the fridge's content, in milliseconds (defaults to '"
+                + DEFAULT_LISTING_DEADLINE_MS + "')");
+    cliOptions.addOption(cliOptionListingDeadline);
+
+    final var cliOptionInsertDeadline = new Option(
+            "insertdeadline",
+            true,
+            "The time allowed to insert an item in the fridge, in milliseconds (defaults to '"
+                + DEFAULT_INSERT_DEADLINE_MS + "')");
+    cliOptions.addOption(cliOptionInsertDeadline);
+
     // Parse command line
     final var commandLineParser = new DefaultParser();
     final var helpFormatter = new HelpFormatter();
@@ -123,12 +184,65 @@ public class Main {
     } catch (final NumberFormatException e) {
       throw new IllegalArgumentException("Invalid port number", e);
     }
+    int partitionsAhead;
+    try {
+      partitionsAhead = Integer.parseInt(commandLine.getOptionValue(
+              cliOptionPartitionsAhead,
+              Integer.toString(DEFAULT_PARTITIONS_AHEAD)));
+    } catch (final NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid number of partitions ahead", e);
+    }
+    if (partitionsAhead < 0) {
+      throw new IllegalArgumentException("Invalid number of partitions ahead: " + partitionsAhead);
+    }
+    int partitionRetention;
+    try {
+      partitionRetention = Integer.parseInt(commandLine.getOptionValue(
+              cliOptionPartitionRetention,
+              Integer.toString(DEFAULT_PARTITION_RETENTION)));
+    } catch (final NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid partition retention", e);
+    }
+    if (partitionRetention < 0) {
+      throw new IllegalArgumentException("Invalid partition retention: " + partitionRetention);
+    }
+    final String idStrategy = commandLine.getOptionValue(cliOptionIdStrategy, DEFAULT_ID_STRATEGY);
+    if (!ID_STRATEGY_UUIDV4.equals(idStrategy) && !ID_STRATEGY_UUIDV7.equals(idStrategy)) {
+      throw new IllegalArgumentException("Invalid identifier strategy: " + idStrategy);
+    }
+    Duration listingDeadline;
+    Duration insertDeadline;
+    try {
+      listingDeadline = Duration.ofMillis(Long.parseLong(commandLine.getOptionValue(
+              cliOptionListingDeadline,
+              Long.toString(DEFAULT_LISTING_DEADLINE_MS))));
+      insertDeadline = Duration.ofMillis(Long.parseLong(commandLine.getOptionValue(
+              cliOptionInsertDeadline,
+              Long.toString(DEFAULT_INSERT_DEADLINE_MS))));
+    } catch (final NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid deadline", e);
+    }
+    if (listingDeadline.isNegative() || listingDeadline.isZero()) {
+      throw new IllegalArgumentException("Invalid listing deadline: " + listingDeadline.toMillis());
+    }
+    if (insertDeadline.isNegative() || insertDeadline.isZero()) {
+      throw new IllegalArgumentException("Invalid insert deadline: " + insertDeadline.toMillis());
+    }
 
     // Launch it!
     if (commandLine.hasOption(cliOptionHelp)) {
       helpFormatter.printHelp("fridge", cliOptions);
     } else {
-      launchApplication(pgJdbcUrl, pgJdbcUser, pgJdbcPassword, httpPort);
+      launchApplication(
+              pgJdbcUrl,
+              pgJdbcUser,
+              pgJdbcPassword,
+              httpPort,
+              partitionsAhead,
+              partitionRetention,
+              idStrategy,
+              listingDeadline,
+              insertDeadline);
     }
   }
 
@@ -139,32 +253,87 @@ public class Main {
    * @param pgJdbcUser The Postgres JDBC user
    * @param pgJdbcPassword The Postgres JDBC password
    * @param httpPort The HTTP server port
+   * @param partitionsAhead The number of future monthly fridge partitions to create ahead of time
+   * @param partitionRetention The number of past monthly fridge partitions to keep
+   * @param idStrategy The fridge row identifier strategy
+   * @param listingDeadline The time allowed to list the fridge's content
+   * @param insertDeadline The time allowed to insert an item in the fridge
    */
   public static void launchApplication(
           final String pgJdbcUrl,
           final String pgJdbcUser,
           final String pgJdbcPassword,
-          final int httpPort) {
+          final int httpPort,
+          final int partitionsAhead,
+          final int partitionRetention,
+          final String idStrategy,
+          final Duration listingDeadline,
+          final Duration insertDeadline) {
     LOG.info("Setting clock to UTC");
     TimeZone.setDefault(TimeZone.getTimeZone(ZoneOffset.UTC.getId()));
     final Clock clock = Clock.systemUTC();
 
     LOG.info("Initializing metrics");
     JvmMetrics.builder().register();
+    final Counter fridgeListingRequestCounter = Counter.builder()
+            .name("fridge_listing_requests")
+            .help("Number of fridge listing requests")
+            .register();
+    final Counter fridgeListingQueryCounter = Counter.builder()
+            .name("fridge_listing_queries")
+            .help("Number of fridge listing database queries, shared by concurrent listing requests")
+            .register();
+    final Counter deadlineExceededCounter = Counter.builder()
+            .name("fridge_deadline_exceeded")
+            .help("Number of fridge requests that ran out of time")
+            .labelNames("method")
+            .register();
 
     LOG.info("Creating database connection pool");
     final var hikariConfig = new HikariConfig();
     hikariConfig.setJdbcUrl(pgJdbcUrl);
     hikariConfig.setUsername(pgJdbcUser);
     hikariConfig.setPassword(pgJdbcPassword);
-    final var hikariDS = new HikariDataSource(hikariConfig);
+    // Unlike HikariDataSource, HikariPool does not fill in the configuration's defaults by itself
+    hikariConfig.validate();
+    final var hikariPool = new HikariPool(hikariConfig);
 
     LOG.info("Configuring JDBI");
-    final var jdbi = Jdbi.create(hikariDS);
+    // Connection waits and query timeouts are bounded by the request deadlines
+    final var jdbi = Jdbi.create(new DeadlineConnectionFactory(hikariPool, hikariConfig.getConnectionTimeout()));
+    jdbi.getConfig(SqlStatements.class).addCustomizer(new DeadlineStatementCustomizer());
     jdbi.installPlugin(new SqlObjectPlugin());
     jdbi.registerRowMapper(new FridgeRowMapper());
     final FridgeDAO fridgeDao = jdbi.onDemand(FridgeDAO.class);
 
+    LOG.info("Migrating database schema");
+    new SchemaMigrator(jdbi).migrate();
+
+    LOG.info("Scheduling fridge partition maintenance");
+    final var partitionMaintainer = new FridgePartitionMaintainer(jdbi, clock, partitionsAhead, partitionRetention);
+    partitionMaintainer.maintain();
+    final ScheduledExecutorService maintenanceExecutor = Executors.newSingleThreadScheduledExecutor(
+            runnable -> new Thread(runnable, "partition-maintenance"));
+    maintenanceExecutor.scheduleAtFixedRate(() -> {
+      try {
+        partitionMaintainer.maintain();
+      } catch (final Exception e) {
+        LOG.error("Fridge partition maintenance failure", e);
+      }
+    }, PARTITION_MAINTENANCE_PERIOD_HOURS, PARTITION_MAINTENANCE_PERIOD_HOURS, TimeUnit.HOURS);
+
+    LOG.info("Using {} fridge row identifiers", idStrategy);
+    final Supplier<UUID> idGenerator = ID_STRATEGY_UUIDV4.equals(idStrategy)
+            ? UUID::randomUUID
+            : new UuidV7Generator(clock);
+
+    LOG.info("Creating fridge listing executor");
+    // Listing queries hold a database connection: there is no point in running more of them at once
+    final AtomicInteger listingThreadCount = new AtomicInteger();
+    final ExecutorService listingExecutor = Executors.newFixedThreadPool(
+            hikariConfig.getMaximumPoolSize(),
+            runnable -> new Thread(runnable, "fridge-listing-" + listingThreadCount.incrementAndGet()));
+
     LOG.info("Configuring Jakarta JSON");
     final JsonBuilderFactory jsonBuilderFactory = Json.createBuilderFactory(Collections.emptyMap());
 
@@ -187,7 +356,17 @@ public class Main {
 
     // Setup the application endpoint
     final var fridgeServletContextHandler = new ServletContextHandler("/fridge");
-    final var fridgeServlet = new FridgeApplication(fridgeDao, validator, jsonBuilderFactory);
+    final var fridgeServlet = new FridgeApplication(
+            fridgeDao,
+            validator,
+            jsonBuilderFactory,
+            idGenerator,
+            listingExecutor,
+            fridgeListingRequestCounter,
+            fridgeListingQueryCounter,
+            listingDeadline,
+            insertDeadline,
+            deadlineExceededCounter);
     final var fridgeErrorHandler = new FridgeErrorHandler(jsonBuilderFactory);
     final var fridgeServletHolder = new ServletHolder(fridgeServlet);
     fridgeServletContextHandler.addServlet(fridgeServletHolder, "/");
@@ -204,8 +383,12 @@ public class Main {
       try {
         LOG.info("Stopping Jetty");
         jettyServer.stop();
+        LOG.info("Stopping fridge listing executor");
+        listingExecutor.shutdownNow();
+        LOG.info("Stopping partition maintenance");
+        maintenanceExecutor.shutdownNow();
         LOG.info("Stopping Hikari");
-        hikariDS.close();
+        hikariPool.shutdown();
       } catch (final Exception e) {
         LOG.error("Clean shutdown failure", e);
       }
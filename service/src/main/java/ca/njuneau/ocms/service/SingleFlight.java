@@ -0,0 +1,166 @@
+// This file is part of OCMS.
+//
+// OCMS is free software: you can redistribute it and/or modify it under the terms of the GNU
+// General Public License as published by the Free Software Foundation, either version 3 of the
+// License, or (at your option) any later version.
+//
+// OCMS is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+// the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along with OCMS.  If not, see
+// <https://www.gnu.org/licenses/>.
+
+package ca.njuneau.ocms.service;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import io.prometheus.metrics.core.metrics.Counter;
+
+/**
+ * Coalesces concurrent loads of the same value into a single load.
+ *
+ * The first caller to arrive starts the loader on the executor; callers arriving while that load is
+ * in flight share its result. Every caller, including the one that started the load, waits for it no
+ * longer than it is willing to. Nothing is kept once the load completes: the next caller starts a new
+ * load.
+ *
+ * Calling {@link #newGeneration()} detaches the load in flight from callers that arrive afterwards,
+ * so that a change made before a caller arrives is always visible to that caller.
+ *
+ * @param <T> The type of the loaded value
+ */
+public class SingleFlight<T> {
+
+  private final Supplier<T> loader;
+  private final Executor executor;
+  private final Counter requestCounter;
+  private final Counter loadCounter;
+
+  private final AtomicLong generation = new AtomicLong();
+  private final AtomicReference<Flight<T>> inFlight = new AtomicReference<>();
+
+  /**
+   * @param loader The loader producing the value
+   * @param executor The executor running the loader
+   * @param requestCounter Incremented every time the value is requested
+   * @param loadCounter Incremented every time the loader is actually run
+   */
+  public SingleFlight(
+      final Supplier<T> loader,
+      final Executor executor,
+      final Counter requestCounter,
+      final Counter loadCounter) {
+    this.loader = loader;
+    this.executor = executor;
+    this.requestCounter = requestCounter;
+    this.loadCounter = loadCounter;
+  }
+
+  /**
+   * Obtains the value, either by running the loader or by joining the load already in flight
+   *
+   * @param maxWait The longest to wait for the load
+   * @return The loaded value
+   * @throws TimeoutException If the load did not complete in time
+   * @throws InterruptedException If interrupted while waiting for the load
+   */
+  public T get(final Duration maxWait) throws TimeoutException, InterruptedException {
+    requestCounter.inc();
+    while (true) {
+      final long currentGeneration = generation.get();
+      final Flight<T> flight = inFlight.get();
+      if (flight != null && flight.generation == currentGeneration) {
+        return join(flight, maxWait);
+      }
+
+      final var newFlight = new Flight<T>(currentGeneration);
+      if (inFlight.compareAndSet(flight, newFlight)) {
+        start(newFlight);
+        return join(newFlight, maxWait);
+      }
+    }
+  }
+
+  /**
+   * Starts a new generation. Callers arriving after this call never join a load that started before
+   * it.
+   */
+  public void newGeneration() {
+    generation.incrementAndGet();
+  }
+
+  /**
+   * Starts running the loader on behalf of every caller of the given flight
+   *
+   * @param flight The flight started by the current thread
+   */
+  private void start(final Flight<T> flight) {
+    loadCounter.inc();
+    try {
+      executor.execute(() -> {
+        try {
+          flight.result.complete(loader.get());
+        } catch (final RuntimeException | Error e) {
+          flight.result.completeExceptionally(e);
+        } finally {
+          inFlight.compareAndSet(flight, null);
+        }
+      });
+    } catch (final RejectedExecutionException e) {
+      inFlight.compareAndSet(flight, null);
+      flight.result.completeExceptionally(e);
+    }
+  }
+
+  /**
+   * Waits for a flight
+   *
+   * @param flight The flight to wait for
+   * @param maxWait The longest to wait for the flight
+   * @return The loaded value
+   * @throws TimeoutException If the flight did not complete in time
+   * @throws InterruptedException If interrupted while waiting
+   */
+  private T join(final Flight<T> flight, final Duration maxWait) throws TimeoutException, InterruptedException {
+    try {
+      return flight.result.get(maxWait.toNanos(), TimeUnit.NANOSECONDS);
+    } catch (final ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException cause) {
+        throw cause;
+      } else if (e.getCause() instanceof Error cause) {
+        throw cause;
+      }
+      throw new IllegalStateException("Unexpected load failure", e.getCause());
+    }
+  }
+
+  /**
+   * A single run of the loader
+   *
+   * @param <T> The type of the loaded value
+   */
+  private static final class Flight<T> {
+
+    private final long generation;
+    private final CompletableFuture<T> result = new CompletableFuture<>();
+
+    /**
+     * @param generation The generation in which the flight was started
+     */
+    private Flight(final long generation) {
+      this.generation = generation;
+    }
+
+  }
+
+}
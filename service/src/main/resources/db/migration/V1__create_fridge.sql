@@ -0,0 +1,12 @@
+-- Baseline schema, as historically created by scripts/init-db.sh. Databases initialized by that
+-- script already have it, hence the IF NOT EXISTS clauses.
+CREATE TABLE IF NOT EXISTS fridge(
+  id            uuid                      PRIMARY KEY,
+  name          VARCHAR(255)              NOT NULL,
+  date_entered  TIMESTAMP WITH TIME ZONE  NOT NULL DEFAULT (now() AT TIME ZONE 'utc'),
+  date_expiry   TIMESTAMP WITH TIME ZONE  NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS fridge_name_idx ON fridge (name);
+CREATE INDEX IF NOT EXISTS fridge_date_entered_idx ON fridge (date_entered);
+CREATE INDEX IF NOT EXISTS fridge_date_expiry_idx ON fridge (date_expiry);
@@ -0,0 +1,25 @@
+-- Range-partitions the fridge by expiry date. Monthly partitions are managed by the application
+-- (see FridgePartitionMaintainer); rows falling outside of them land in the default partition.
+--
+-- The primary key must contain the partition key. The secondary indexes are not recreated: no
+-- query uses them and every insert had to maintain them.
+ALTER TABLE fridge RENAME TO fridge_unpartitioned;
+ALTER TABLE fridge_unpartitioned RENAME CONSTRAINT fridge_pkey TO fridge_unpartitioned_pkey;
+DROP INDEX fridge_name_idx;
+DROP INDEX fridge_date_entered_idx;
+DROP INDEX fridge_date_expiry_idx;
+
+CREATE TABLE fridge(
+  id            uuid                      NOT NULL,
+  name          VARCHAR(255)              NOT NULL,
+  date_entered  TIMESTAMP WITH TIME ZONE  NOT NULL DEFAULT (now() AT TIME ZONE 'utc'),
+  date_expiry   TIMESTAMP WITH TIME ZONE  NOT NULL,
+  PRIMARY KEY (id, date_expiry)
+) PARTITION BY RANGE (date_expiry);
+
+CREATE TABLE fridge_default PARTITION OF fridge DEFAULT;
+
+INSERT INTO fridge (id, name, date_entered, date_expiry)
+  SELECT id, name, date_entered, date_expiry FROM fridge_unpartitioned;
+
+DROP TABLE fridge_unpartitioned;